@@ -217,7 +217,31 @@ public class JWT {
             // Create final string
             return new String(token, StandardCharsets.UTF_8);
     }
-    
+
+    /**
+     * Reads a header field such as kid or alg without verifying the token,
+     * only use the result to pick the key to verify with.
+     *
+     * @param token the encoded token
+     * @param name the header field name
+     * @return the value, strings unescaped and other values as raw JSON, or null if not set
+     */
+    public static String peekHeader(String token, String name) throws JWTException {
+        return JWTPeek.peekHeader(token, name);
+    }
+
+    /**
+     * Reads a claim such as iss without verifying the token, only use the
+     * result to pick the key to verify with.
+     *
+     * @param token the encoded token
+     * @param name the claim name
+     * @return the value, strings unescaped and other values as raw JSON, or null if not set
+     */
+    public static String peekClaim(String token, String name) throws JWTException {
+        return JWTPeek.peekClaim(token, name);
+    }
+
     /**
      * @return the algorithm
      */
@@ -0,0 +1,487 @@
+package dk.nversion.jwt;
+
+/**
+ * Reads a single field from the header or body of a token without verifying
+ * the signature. The Base64URL segment is decoded and scanned straight from
+ * the token string, so the only allocations are the returned value and a
+ * char buffer of exactly its length.
+ */
+final class JWTPeek {
+    private static final int END_OF_STRING = -2;
+    private static final int MAX_DEPTH = 512;
+
+    private final String token;
+    private final int end;
+    private int offset;
+    private int bits;
+    private int bitCount;
+    private int pushback = -1;
+    private char lowSurrogate;
+    private char[] buffer;
+    private int length;
+
+    private JWTPeek(String token, int start, int end) {
+        this.token = token;
+        this.offset = start;
+        this.end = end;
+    }
+
+    /**
+     * @param token the encoded token
+     * @param name the header field name to look up
+     * @return the field value, or null if it is missing or JSON null
+     */
+    static String peekHeader(String token, String name) throws JWTException {
+        return new JWTPeek(token, 0, headerEnd(token)).find(name);
+    }
+
+    /**
+     * @param token the encoded token
+     * @param name the claim name to look up
+     * @return the claim value, or null if it is missing or JSON null
+     */
+    static String peekClaim(String token, String name) throws JWTException {
+        int header_offset = headerEnd(token);
+        return new JWTPeek(token, header_offset + 1, token.indexOf('.', header_offset + 1)).find(name);
+    }
+
+    private static int headerEnd(String token) throws JWTException {
+        int header_offset = token.indexOf('.');
+        int body_offset = header_offset < 0 ? -1 : token.indexOf('.', header_offset + 1);
+        if(body_offset < 0 || token.indexOf('.', body_offset + 1) >= 0) {
+            throw new JWTException("Not a valid JWT token as it does not contain two dots");
+        }
+        return header_offset;
+    }
+
+    private String find(String name) throws JWTException {
+        if(nextNonWhitespace() != '{') {
+            throw new JWTException("Not a valid JWT token as the segment is not a JSON object");
+        }
+
+        // Scan the whole object so a repeated field can not make us return
+        // a different value than the one the verifier ends up using
+        String result = null;
+        boolean found = false;
+        int c = nextNonWhitespace();
+        if(c == '}') {
+            return null;
+        }
+        while(true) {
+            if(c != '"') {
+                throw malformed();
+            }
+            boolean match = matchKey(name);
+            if(nextNonWhitespace() != ':') {
+                throw malformed();
+            }
+            if(match) {
+                if(found) {
+                    throw new JWTException("Not a valid JWT token as it contains a duplicate field");
+                }
+                found = true;
+                result = readValue(nextNonWhitespace());
+            } else {
+                scanValue(nextNonWhitespace(), 0);
+            }
+
+            c = nextNonWhitespace();
+            if(c == '}') {
+                return result;
+            }
+            if(c != ',') {
+                throw malformed();
+            }
+            c = nextNonWhitespace();
+        }
+    }
+
+    private boolean matchKey(String name) throws JWTException {
+        boolean match = true;
+        int i = 0;
+        int c;
+        while((c = readStringChar()) != END_OF_STRING) {
+            if(match && (i >= name.length() || name.charAt(i) != c)) {
+                match = false;
+            }
+            i++;
+        }
+        return match && i == name.length();
+    }
+
+    private String readValue(int c) throws JWTException {
+        if(c == 'n') {
+            expectLiteral("ull");
+            return null;
+        }
+
+        // Count the value in a first pass so it can be copied out in one allocation
+        int markOffset = offset;
+        int markBits = bits;
+        int markBitCount = bitCount;
+        int markPushback = pushback;
+        char markLowSurrogate = lowSurrogate;
+        length = 0;
+        captureValue(c);
+
+        offset = markOffset;
+        bits = markBits;
+        bitCount = markBitCount;
+        pushback = markPushback;
+        lowSurrogate = markLowSurrogate;
+        buffer = new char[length];
+        length = 0;
+        captureValue(c);
+        char[] chars = buffer;
+        buffer = null;
+        return new String(chars);
+    }
+
+    private void captureValue(int c) throws JWTException {
+        if(c == '"') {
+            // Strings are returned unescaped, everything else as raw JSON
+            while((c = readStringChar()) != END_OF_STRING) {
+                append(c);
+            }
+        } else {
+            scanValue(c, 0);
+        }
+    }
+
+    private void scanValue(int c, int depth) throws JWTException {
+        if(depth >= MAX_DEPTH) {
+            throw malformed();
+        }
+        switch (c) {
+            case '"': {
+                append(c);
+                scanRawString();
+                return;
+            }
+            case '{': {
+                append(c);
+                c = nextNonWhitespace();
+                if(c != '}') {
+                    while(true) {
+                        if(c != '"') {
+                            throw malformed();
+                        }
+                        append(c);
+                        scanRawString();
+                        if(nextNonWhitespace() != ':') {
+                            throw malformed();
+                        }
+                        append(':');
+                        scanValue(nextNonWhitespace(), depth + 1);
+                        c = nextNonWhitespace();
+                        if(c == '}') {
+                            break;
+                        }
+                        if(c != ',') {
+                            throw malformed();
+                        }
+                        append(c);
+                        c = nextNonWhitespace();
+                    }
+                }
+                append(c);
+                return;
+            }
+            case '[': {
+                append(c);
+                c = nextNonWhitespace();
+                if(c != ']') {
+                    while(true) {
+                        scanValue(c, depth + 1);
+                        c = nextNonWhitespace();
+                        if(c == ']') {
+                            break;
+                        }
+                        if(c != ',') {
+                            throw malformed();
+                        }
+                        append(c);
+                        c = nextNonWhitespace();
+                    }
+                }
+                append(c);
+                return;
+            }
+            case 't': {
+                append(c);
+                expectLiteral("rue");
+                return;
+            }
+            case 'f': {
+                append(c);
+                expectLiteral("alse");
+                return;
+            }
+            case 'n': {
+                append(c);
+                expectLiteral("ull");
+                return;
+            }
+            default: {
+                scanNumber(c);
+            }
+        }
+    }
+
+    private void scanNumber(int c) throws JWTException {
+        if(c == '-') {
+            append(c);
+            c = readChar();
+        }
+        if(c == '0') {
+            append(c);
+            c = readChar();
+        } else if(isDigit(c)) {
+            c = scanDigits(c);
+        } else {
+            throw malformed();
+        }
+        if(c == '.') {
+            append(c);
+            c = scanDigits(readChar());
+        }
+        if(c == 'e' || c == 'E') {
+            append(c);
+            c = readChar();
+            if(c == '+' || c == '-') {
+                append(c);
+                c = readChar();
+            }
+            c = scanDigits(c);
+        }
+        pushback = c;
+    }
+
+    /**
+     * @return the first char after one or more digits
+     */
+    private int scanDigits(int c) throws JWTException {
+        if(!isDigit(c)) {
+            throw malformed();
+        }
+        do {
+            append(c);
+            c = readChar();
+        } while(isDigit(c));
+        return c;
+    }
+
+    private void expectLiteral(String literal) throws JWTException {
+        for(int i = 0; i < literal.length(); i++) {
+            int c = readChar();
+            if(c != literal.charAt(i)) {
+                throw malformed();
+            }
+            append(c);
+        }
+    }
+
+    private void scanRawString() throws JWTException {
+        int c;
+        while((c = readChar()) != '"') {
+            if(c < 0x20) {
+                throw malformed();
+            }
+            append(c);
+            if(c == '\\') {
+                c = readChar();
+                switch (c) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                    case 'b':
+                    case 'f':
+                    case 'n':
+                    case 'r':
+                    case 't':
+                        append(c);
+                        break;
+                    case 'u': {
+                        append(c);
+                        for(int i = 0; i < 4; i++) {
+                            c = readChar();
+                            if(Character.digit(c, 16) < 0) {
+                                throw malformed();
+                            }
+                            append(c);
+                        }
+                        break;
+                    }
+                    default:
+                        throw malformed();
+                }
+            }
+        }
+        append(c);
+    }
+
+    private int readStringChar() throws JWTException {
+        int c = readChar();
+        if(c == '"') {
+            return END_OF_STRING;
+        }
+        if(c < 0x20) {
+            throw malformed();
+        }
+        if(c != '\\') {
+            return c;
+        }
+        c = readChar();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u': {
+                int value = 0;
+                for(int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readChar(), 16);
+                    if(digit < 0) {
+                        throw malformed();
+                    }
+                    value = (value << 4) | digit;
+                }
+                return value;
+            }
+            default:
+                throw malformed();
+        }
+    }
+
+    private int nextNonWhitespace() throws JWTException {
+        int c;
+        do {
+            c = readChar();
+        } while(isWhitespace(c));
+        return c;
+    }
+
+    /**
+     * @return the next UTF-16 code unit of the decoded segment, or -1 at the end
+     */
+    private int readChar() throws JWTException {
+        if(pushback >= 0) {
+            int c = pushback;
+            pushback = -1;
+            return c;
+        }
+        if(lowSurrogate != 0) {
+            char c = lowSurrogate;
+            lowSurrogate = 0;
+            return c;
+        }
+
+        int b = readByte();
+        if(b < 0x80) {
+            return b;
+        }
+        int remaining;
+        int codepoint;
+        int minimum;
+        if(b >= 0xc2 && b <= 0xdf) {
+            remaining = 1;
+            codepoint = b & 0x1f;
+            minimum = 0x80;
+        } else if((b & 0xf0) == 0xe0) {
+            remaining = 2;
+            codepoint = b & 0x0f;
+            minimum = 0x800;
+        } else if(b >= 0xf0 && b <= 0xf4) {
+            remaining = 3;
+            codepoint = b & 0x07;
+            minimum = 0x10000;
+        } else {
+            throw invalidUtf8();
+        }
+        while(remaining-- > 0) {
+            b = readByte();
+            if(b < 0 || (b & 0xc0) != 0x80) {
+                throw invalidUtf8();
+            }
+            codepoint = (codepoint << 6) | (b & 0x3f);
+        }
+        // Reject overlong forms, surrogates and anything past the last code point
+        if(codepoint < minimum || codepoint > 0x10ffff || (codepoint >= 0xd800 && codepoint <= 0xdfff)) {
+            throw invalidUtf8();
+        }
+        if(Character.isSupplementaryCodePoint(codepoint)) {
+            lowSurrogate = Character.lowSurrogate(codepoint);
+            return Character.highSurrogate(codepoint);
+        }
+        return codepoint;
+    }
+
+    /**
+     * @return the next decoded byte of the segment, or -1 at the end
+     */
+    private int readByte() throws JWTException {
+        while(bitCount < 8) {
+            if(offset >= end) {
+                return -1;
+            }
+            char c = token.charAt(offset++);
+            int value;
+            if(c >= 'A' && c <= 'Z') {
+                value = c - 'A';
+            } else if(c >= 'a' && c <= 'z') {
+                value = c - 'a' + 26;
+            } else if(c >= '0' && c <= '9') {
+                value = c - '0' + 52;
+            } else if(c == '-' || c == '+') {
+                value = 62;
+            } else if(c == '_' || c == '/') {
+                value = 63;
+            } else if(c == '=') {
+                offset = end;
+                return -1;
+            } else {
+                throw new JWTException("Not a valid JWT token as it contains invalid Base64 characters");
+            }
+            bits = ((bits << 6) | value) & 0xffff;
+            bitCount += 6;
+        }
+        bitCount -= 8;
+        return (bits >> bitCount) & 0xff;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Counts the char, and stores it once the buffer has been sized
+     */
+    private void append(int c) {
+        if(buffer != null) {
+            buffer[length] = (char)c;
+        }
+        length++;
+    }
+
+    private static JWTException malformed() {
+        return new JWTException("Not a valid JWT token as it contains malformed JSON");
+    }
+
+    private static JWTException invalidUtf8() {
+        return new JWTException("Not a valid JWT token as it contains invalid UTF-8");
+    }
+}